@@ -50,5 +50,25 @@ public @interface Cache {
 	boolean diskPersistent() default false;
 
 	long diskExpiryThreadIntervalSeconds() default -1;
+
+	/**
+	 * Evaluated with the method arguments before the cache is consulted. If it
+	 * does not hold the method is invoked and its return value is not cached.
+	 */
+	Class<? extends CachePredicate> condition() default CachePredicate.class;
+
+	/**
+	 * Evaluated with the method arguments and return value after the method is
+	 * invoked. If it holds the return value is not cached.
+	 */
+	Class<? extends CachePredicate> unless() default CachePredicate.class;
+
+	/**
+	 * Assigns a time to live to each return value as it is cached. A policy
+	 * that returns less than -1 makes the call fail with an
+	 * IllegalStateException, which is raised after the method has been invoked
+	 * so its return value is lost.
+	 */
+	Class<? extends CacheTtlPolicy> ttlPolicy() default CacheTtlPolicy.class;
 	
 }
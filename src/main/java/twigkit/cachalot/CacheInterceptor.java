@@ -26,7 +26,10 @@ import org.aopalliance.intercept.MethodInvocation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.reflect.Method;
 import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Intercepts calls to methods that are annotated with {@link Cache} and returns
@@ -42,6 +45,7 @@ public class CacheInterceptor implements MethodInterceptor {
 
     private static final Logger logger = LoggerFactory.getLogger(CacheInterceptor.class);
     private CacheManager cacheManager;
+    private final ConcurrentMap<Method, Hooks> hooks = new ConcurrentHashMap<Method, Hooks>();
 
     public CacheInterceptor() {
     }
@@ -83,6 +87,22 @@ public class CacheInterceptor implements MethodInterceptor {
          */
         Cache cache = getCache(conf, invocation.getMethod().getName());
 
+        /**
+         * Get the condition, unless and TTL policy instances for the method
+         */
+        Hooks h = getHooks(invocation.getMethod(), conf);
+
+        /**
+         * If the condition does not hold for the arguments, then neither look up
+         * nor store the return value
+         */
+        if (cache != null && h.condition != null && !h.condition.apply(invocation.getArguments(), null)) {
+            if (logger.isTraceEnabled()) {
+                logger.trace("Call to [" + invocation.getMethod().getName() + "] bypasses cache, condition not met for key [" + key + "]");
+            }
+            cache = null;
+        }
+
         /**
          * If a cache is found, then check the cache for a value that corresponds
          * to the method's argument list
@@ -131,11 +151,37 @@ public class CacheInterceptor implements MethodInterceptor {
         if (cache != null && returnValue != null) {
             Element e = new Element(key, returnValue);
 
-            if (e.isSerializable() || !conf.diskPersistent()) {
+            boolean unless = h.unless != null && h.unless.apply(invocation.getArguments(), returnValue);
+
+            long timeToLive = -1;
+            if (!unless && h.ttlPolicy != null) {
+                timeToLive = h.ttlPolicy.timeToLiveSeconds(invocation.getArguments(), returnValue);
+                if (timeToLive < -1) {
+                    throw new IllegalStateException("TTL policy [" + h.ttlPolicy.getClass().getName() + "] returned [" + timeToLive + "], expected -1 or more");
+                }
+                if (timeToLive > 0) {
+                    /**
+                     * An element with its own TTL no longer takes the cache
+                     * defaults, so carry over the cache's TTI as well
+                     */
+                    e.setTimeToLive((int) Math.min(Integer.MAX_VALUE, timeToLive));
+                    e.setTimeToIdle((int) Math.min(Integer.MAX_VALUE, cache.getCacheConfiguration().getTimeToIdleSeconds()));
+                }
+            }
+
+            if (unless) {
+                if (logger.isTraceEnabled()) {
+                    logger.trace("Return value not cached for key [" + key + "], unless predicate holds");
+                }
+            } else if (timeToLive == 0) {
+                if (logger.isTraceEnabled()) {
+                    logger.trace("Return value not cached for key [" + key + "], TTL policy returned 0");
+                }
+            } else if (e.isSerializable() || !conf.diskPersistent()) {
                 if (logger.isTraceEnabled()) {
                     logger.trace("Caching return value [" + key + " > " + returnValue + "]");
                 }
-                cache.put(new Element(key, returnValue));
+                cache.put(e);
             } else {
                 if (logger.isTraceEnabled()) {
                     logger.trace("Return value could not be cached - not serializable and attempting to persist to disk");
@@ -205,6 +251,41 @@ public class CacheInterceptor implements MethodInterceptor {
         return cache;
     }
 
+    /**
+     * Get the condition, unless and TTL policy instances configured for the
+     * method, instantiating them the first time the method is called.
+     *
+     * @param method The target method
+     * @param conf   The Cached annotation used for the target method
+     * @return The hooks for the method, with null for those not configured
+     */
+    private Hooks getHooks(Method method, twigkit.cachalot.Cache conf) {
+        Hooks h = hooks.get(method);
+        if (h == null) {
+            h = new Hooks(
+                    newInstance(conf.condition(), CachePredicate.class),
+                    newInstance(conf.unless(), CachePredicate.class),
+                    newInstance(conf.ttlPolicy(), CacheTtlPolicy.class));
+
+            Hooks existing = hooks.putIfAbsent(method, h);
+            if (existing != null) {
+                h = existing;
+            }
+        }
+        return h;
+    }
+
+    private <T> T newInstance(Class<? extends T> type, Class<T> none) {
+        if (type == none) {
+            return null;
+        }
+        try {
+            return type.getConstructor().newInstance();
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not instantiate [" + type.getName() + "]", e);
+        }
+    }
+
     /**
      * Create a suitable cache key based on the target method's parameters.
      *
@@ -223,4 +304,21 @@ public class CacheInterceptor implements MethodInterceptor {
     public void setCacheManager(@Cachalot CacheManager cacheManager) {
         this.cacheManager = cacheManager;
     }
+
+    /**
+     * Per method instances of the classes configured on the {@link Cache}
+     * annotation.
+     */
+    private static class Hooks {
+
+        private final CachePredicate condition;
+        private final CachePredicate unless;
+        private final CacheTtlPolicy ttlPolicy;
+
+        private Hooks(CachePredicate condition, CachePredicate unless, CacheTtlPolicy ttlPolicy) {
+            this.condition = condition;
+            this.unless = unless;
+            this.ttlPolicy = ttlPolicy;
+        }
+    }
 }
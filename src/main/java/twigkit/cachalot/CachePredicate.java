@@ -0,0 +1,35 @@
+/*
+ * Copyright 2010 Hjortur Stefan Olafsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package twigkit.cachalot;
+
+/**
+ * A predicate used by the {@link Cache} annotation to decide per call whether
+ * the cache is used. Implementations must have a public no-argument constructor
+ * and are instantiated once per annotated method, so they should be thread-safe.
+ *
+ * @author mr.olafsson
+ */
+public interface CachePredicate {
+
+    /**
+     * @param arguments   Arguments passed to the method being cached
+     * @param returnValue The value returned by the method, or null when the
+     *                    predicate is evaluated before the method is invoked
+     * @return true if the predicate holds for the call
+     */
+    boolean apply(Object[] arguments, Object returnValue);
+}
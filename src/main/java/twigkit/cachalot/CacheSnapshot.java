@@ -0,0 +1,366 @@
+/*
+ * Copyright 2010 Hjortur Stefan Olafsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package twigkit.cachalot;
+
+import com.google.inject.Inject;
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Exports the contents of a cache managed by the {@link CachalotModule} to a
+ * channel, and imports them again, e.g. to warm up a freshly started node or to
+ * archive the cache for offline analysis.
+ * <p/>
+ * The snapshot is a header followed by one length-prefixed record per element.
+ * Each record holds the lifespan of the element (whether it uses the cache
+ * defaults, whether it is eternal, the remaining time to live and the time to
+ * idle), followed by the serialized key and value. Values are written and read
+ * one at a time, but Ehcache only hands out the keys of a cache as a list, so
+ * export holds all keys of the cache in memory. Elements whose key or value is
+ * not serializable are skipped.
+ *
+ * @author mr.olafsson
+ */
+public class CacheSnapshot {
+
+    private static final Logger logger = LoggerFactory.getLogger(CacheSnapshot.class);
+
+    private static final int MAGIC = 0x43414348;
+    private static final int VERSION = 1;
+
+    public static final int DEFAULT_MAX_RECORD_SIZE = 64 * 1024 * 1024;
+
+    private final CacheManager cacheManager;
+    private final int threads;
+    private final int maxRecordSize;
+
+    @Inject
+    public CacheSnapshot(@Cachalot CacheManager cacheManager) {
+        this(cacheManager, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Instantiate the CacheSnapshot with a {@link net.sf.ehcache.CacheManager}
+     * instance and the number of threads used to load elements on import.
+     *
+     * @param cacheManager
+     * @param threads
+     */
+    public CacheSnapshot(CacheManager cacheManager, int threads) {
+        this(cacheManager, threads, DEFAULT_MAX_RECORD_SIZE);
+    }
+
+    /**
+     * Instantiate the CacheSnapshot with a {@link net.sf.ehcache.CacheManager}
+     * instance, the number of threads used to load elements on import and the
+     * largest record in bytes that import accepts.
+     *
+     * @param cacheManager
+     * @param threads
+     * @param maxRecordSize
+     */
+    public CacheSnapshot(CacheManager cacheManager, int threads, int maxRecordSize) {
+        this.cacheManager = cacheManager;
+        this.threads = Math.max(1, threads);
+        this.maxRecordSize = maxRecordSize;
+    }
+
+    /**
+     * Write all live elements of the named cache to the channel. The channel is
+     * not closed.
+     *
+     * @param name    Name of the cache to export
+     * @param channel Channel to write the snapshot to
+     * @return The number of elements written
+     * @throws IOException If writing to the channel fails
+     * @throws IllegalStateException If the cache does not exist
+     */
+    public int exportCache(String name, WritableByteChannel channel) throws IOException {
+        long start = System.currentTimeMillis();
+
+        Cache cache = cacheManager.getCache(name);
+        if (cache == null) {
+            throw new IllegalStateException("Cache [" + name + "] does not exist");
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(8);
+        header.putInt(MAGIC).putInt(VERSION).flip();
+        write(channel, header);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ByteBuffer length = ByteBuffer.allocate(4);
+        int count = 0;
+
+        for (Object key : cache.getKeys()) {
+            Element element = cache.getQuiet(key);
+            if (element == null || element.isExpired()) {
+                continue;
+            }
+
+            bytes.reset();
+            try {
+                if (!writeRecord(element, bytes)) {
+                    continue;
+                }
+            } catch (NotSerializableException e) {
+                if (logger.isTraceEnabled()) {
+                    logger.trace("Element [" + key + "] could not be exported - not serializable");
+                }
+                continue;
+            }
+
+            length.clear();
+            length.putInt(bytes.size()).flip();
+            write(channel, length);
+            write(channel, ByteBuffer.wrap(bytes.toByteArray()));
+            count++;
+        }
+
+        if (logger.isTraceEnabled()) {
+            logger.trace("Exported " + count + " elements from [" + name + "] in " + (System.currentTimeMillis() - start) + " ms.");
+        }
+        return count;
+    }
+
+    /**
+     * Read a snapshot from the channel and put its elements into the named
+     * cache. Records are read sequentially and loaded into the cache in
+     * parallel. The channel is not closed.
+     * <p/>
+     * The cache must already exist, so that a cache configured by a {@link Cache}
+     * annotation is created with its settings, e.g. by calling the annotated
+     * method once, before elements are imported into it.
+     * <p/>
+     * Classes of keys and values are resolved through the context class loader
+     * of the calling thread, as Ehcache does, so that classes that are not
+     * visible to Cachalot itself can be imported.
+     *
+     * @param name    Name of the cache to import into
+     * @param channel Channel to read the snapshot from
+     * @return The number of elements loaded
+     * @throws IOException If the snapshot cannot be read or an element cannot be loaded
+     * @throws IllegalStateException If the cache does not exist
+     */
+    public int importCache(String name, ReadableByteChannel channel) throws IOException {
+        long start = System.currentTimeMillis();
+
+        final Cache cache = cacheManager.getCache(name);
+        if (cache == null) {
+            throw new IllegalStateException("Cache [" + name + "] does not exist");
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(8);
+        if (!read(channel, header)) {
+            throw new EOFException("Snapshot is empty");
+        }
+        header.flip();
+        if (header.getInt() != MAGIC) {
+            throw new IOException("Not a cache snapshot");
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported snapshot version [" + version + "]");
+        }
+
+        ClassLoader contextLoader = Thread.currentThread().getContextClassLoader();
+        final ClassLoader loader = contextLoader != null ? contextLoader : CacheSnapshot.class.getClassLoader();
+
+        final AtomicInteger count = new AtomicInteger();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        IOException thrown = null;
+
+        /**
+         * A bounded queue with the caller running overflow keeps the number of
+         * records held in memory proportional to the number of threads
+         */
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(threads * 4), new ThreadPoolExecutor.CallerRunsPolicy());
+
+        try {
+            ByteBuffer length = ByteBuffer.allocate(4);
+            while (failure.get() == null) {
+                length.clear();
+                if (!read(channel, length)) {
+                    break;
+                }
+                length.flip();
+
+                int size = length.getInt();
+                if (size < 0 || size > maxRecordSize) {
+                    throw new IOException("Corrupt snapshot, record length [" + size + "] outside 0-" + maxRecordSize);
+                }
+                final byte[] record = new byte[size];
+                if (!read(channel, ByteBuffer.wrap(record))) {
+                    throw new EOFException("Snapshot ended in the middle of a record");
+                }
+
+                executor.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            cache.put(readRecord(record, loader));
+                            count.incrementAndGet();
+                        } catch (Throwable t) {
+                            failure.compareAndSet(null, t);
+                        }
+                    }
+                });
+            }
+        } catch (IOException e) {
+            thrown = e;
+            throw e;
+        } finally {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                /**
+                 * Stop the workers so nothing is put into the cache after
+                 * returning, and keep whatever went wrong before the interrupt
+                 */
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+
+                InterruptedIOException interrupted = new InterruptedIOException("Interrupted while importing into [" + name + "]");
+                interrupted.initCause(thrown != null ? thrown : failure.get());
+                throw interrupted;
+            }
+        }
+
+        if (failure.get() != null) {
+            throw new IOException("Could not import element into [" + name + "]", failure.get());
+        }
+
+        if (logger.isTraceEnabled()) {
+            logger.trace("Imported " + count.get() + " elements into [" + name + "] in " + (System.currentTimeMillis() - start) + " ms.");
+        }
+        return count.get();
+    }
+
+    /**
+     * Serialize an element with its lifespan. Elements that use the cache
+     * defaults and have no time to live are restored with the defaults of the
+     * target cache. Otherwise the time to live is written as the number of
+     * seconds remaining since the element was created, so that it expires at
+     * the same time after it is imported.
+     *
+     * @return false if the element has expired and was not written
+     */
+    private boolean writeRecord(Element element, ByteArrayOutputStream bytes) throws IOException {
+        boolean eternal = element.isEternal();
+
+        int timeToLive = 0;
+        if (!eternal && element.getTimeToLive() > 0) {
+            long remaining = element.getCreationTime() + element.getTimeToLive() * 1000L - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            timeToLive = (int) Math.min(Integer.MAX_VALUE, (remaining + 999) / 1000);
+        }
+
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeBoolean(element.usesCacheDefaultLifespan() && timeToLive == 0);
+        out.writeBoolean(eternal);
+        out.writeInt(timeToLive);
+        out.writeInt(eternal ? 0 : Math.max(0, element.getTimeToIdle()));
+
+        ObjectOutputStream oos = new ObjectOutputStream(out);
+        oos.writeObject(element.getObjectKey());
+        oos.writeObject(element.getObjectValue());
+        oos.flush();
+        return true;
+    }
+
+    /**
+     * Deserialize an element and restore its lifespan, resolving classes
+     * through the given class loader.
+     */
+    private Element readRecord(byte[] record, final ClassLoader loader) throws IOException, ClassNotFoundException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        boolean cacheDefaultLifespan = in.readBoolean();
+        boolean eternal = in.readBoolean();
+        int timeToLive = in.readInt();
+        int timeToIdle = in.readInt();
+
+        ObjectInputStream ois = new ObjectInputStream(in) {
+            @Override
+            protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+                try {
+                    return Class.forName(desc.getName(), false, loader);
+                } catch (ClassNotFoundException e) {
+                    return super.resolveClass(desc);
+                }
+            }
+        };
+        Object key = ois.readObject();
+        Object value = ois.readObject();
+
+        if (cacheDefaultLifespan) {
+            return new Element(key, value);
+        } else if (eternal) {
+            return new Element(key, value, Boolean.TRUE, 0, 0);
+        }
+        return new Element(key, value, Boolean.FALSE, timeToIdle, timeToLive);
+    }
+
+    private void write(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Fill the buffer from the channel.
+     *
+     * @return false if the channel was at end of stream before anything was read
+     * @throws EOFException If the channel ends after the buffer was partially filled
+     */
+    private boolean read(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+        int start = buffer.position();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                if (buffer.position() == start) {
+                    return false;
+                }
+                throw new EOFException("Snapshot ended unexpectedly");
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2010 Hjortur Stefan Olafsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package twigkit.cachalot;
+
+/**
+ * A policy used by the {@link Cache} annotation to assign a time to live to each
+ * return value as it is cached. Implementations must have a public no-argument
+ * constructor and are instantiated once per annotated method, so they should be
+ * thread-safe.
+ *
+ * @author mr.olafsson
+ */
+public interface CacheTtlPolicy {
+
+    /**
+     * @param arguments   Arguments passed to the method being cached
+     * @param returnValue The value returned by the method
+     * @return Time to live in seconds, 0 to not cache the value, or -1 to use
+     *         the time to live of the cache. The time to idle of the cache
+     *         applies either way.
+     * @throws IllegalStateException Thrown by the interceptor for values below -1
+     */
+    long timeToLiveSeconds(Object[] arguments, Object returnValue);
+}
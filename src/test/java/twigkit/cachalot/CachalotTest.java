@@ -25,6 +25,7 @@ import com.google.inject.util.Modules;
 import java.util.Date;
 
 import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -117,4 +118,73 @@ public class CachalotTest {
         assertEquals("Return value for multiple arguments is incorrect (cached)", mct.getString(arg0, arg1, arg2), "multiple-arguments");
         assertEquals("Invocation count changed even though method should not have been invoked", 1, mct.getInvocationCount());
     }
+
+    @Test
+    public void conditionTest() {
+        CachedMethods mct = injector.getInstance(CachedMethods.class);
+
+        mct.getStringConditional("arg");
+        mct.getStringConditional("arg");
+        assertEquals("Invocation count changed even though method should not have been invoked", 1, mct.getInvocationCount());
+
+        /**
+         * A value cached for the key must not be returned when the condition
+         * does not hold
+         */
+        cacheManager.getCache("conditional").put(new Element("", "cached"));
+
+        assertEquals("Cached value returned even though the condition does not hold", "conditional", mct.getStringConditional(""));
+        assertEquals("Cached value returned even though the condition does not hold", "conditional", mct.getStringConditional(""));
+        assertEquals("Method should have been invoked when the condition does not hold", 3, mct.getInvocationCount());
+        assertEquals("Return value cached even though the condition does not hold", "cached", cacheManager.getCache("conditional").get("").getObjectValue());
+    }
+
+    @Test
+    public void unlessTest() {
+        CachedMethods mct = injector.getInstance(CachedMethods.class);
+
+        assertEquals("Return value for degraded call is incorrect", "degraded", mct.getStringConditional("fail"));
+        assertEquals("Return value for degraded call is incorrect", "degraded", mct.getStringConditional("fail"));
+        assertEquals("Method should have been invoked when the unless predicate holds", 2, mct.getInvocationCount());
+        assertEquals("Degraded return value cached even though the unless predicate holds", 0, cacheManager.getCache("conditional").getSize());
+    }
+
+    @Test
+    public void ttlPolicyTest() {
+        CachedMethods mct = injector.getInstance(CachedMethods.class);
+
+        mct.getStringTtlPolicy("abc");
+        mct.getStringTtlPolicy("abc");
+        assertEquals("Invocation count changed even though method should not have been invoked", 1, mct.getInvocationCount());
+        assertEquals("Time to live assigned by policy is incorrect", 3, cacheManager.getCache("ttl-policy").get("abc").getTimeToLive());
+        assertEquals("Time to idle of the cache not applied with policy TTL", 120, cacheManager.getCache("ttl-policy").get("abc").getTimeToIdle());
+
+        mct.getStringTtlPolicy("");
+        mct.getStringTtlPolicy("");
+        assertEquals("Method should have been invoked when the TTL policy returns 0", 3, mct.getInvocationCount());
+    }
+
+    @Test
+    public void ttlPolicyInvalidTest() {
+        CachedMethods mct = injector.getInstance(CachedMethods.class);
+
+        try {
+            mct.getStringTtlPolicyInvalid("abc");
+            fail("TTL policy returning less than -1 should be rejected");
+        } catch (IllegalStateException e) {
+            assertTrue("Exception does not name the TTL policy", e.getMessage().contains(CachedMethods.Invalid.class.getName()));
+        }
+        assertEquals("Method should have been invoked before the TTL policy was applied", 1, mct.getInvocationCount());
+        assertEquals("Return value cached even though the TTL policy is invalid", 0, cacheManager.getCache("ttl-policy-invalid").getSize());
+    }
+
+    @Test
+    public void ttlPolicyDefaultTest() {
+        CachedMethods mct = injector.getInstance(CachedMethods.class);
+
+        mct.getStringTtlPolicyDefault("abc");
+        mct.getStringTtlPolicyDefault("abc");
+        assertEquals("Invocation count changed even though method should not have been invoked", 1, mct.getInvocationCount());
+        assertEquals("Time to live of the cache not used when the TTL policy returns -1", 60, cacheManager.getCache("ttl-policy-default").get("abc").getTimeToLive());
+    }
 }
\ No newline at end of file
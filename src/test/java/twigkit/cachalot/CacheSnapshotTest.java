@@ -0,0 +1,281 @@
+/*
+ * Copyright 2010 Hjortur Stefan Olafsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package twigkit.cachalot;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.Module;
+import com.google.inject.util.Modules;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for exporting and importing cache snapshots.
+ *
+ * @author mr.olafsson
+ */
+public class CacheSnapshotTest {
+
+    private Injector injector;
+    private CacheManager cacheManager;
+
+    @Before
+    public void setUpClass() throws Exception {
+        Module testModule = Modules.override(new CachalotModule()).with(new CachalotTestModule());
+        injector = Guice.createInjector(testModule);
+
+        cacheManager = injector.getInstance(Key.get(CacheManager.class, Cachalot.class));
+    }
+
+    @After
+    public void tearDownClass() throws Exception {
+        cacheManager.clearAll();
+        cacheManager.shutdown();
+    }
+
+    @Test
+    public void exportImportTest() throws Exception {
+        CachedMethods mct = injector.getInstance(CachedMethods.class);
+        CacheSnapshot snapshot = injector.getInstance(CacheSnapshot.class);
+
+        mct.getString("arg0");
+        mct.getString("arg1");
+        assertEquals("Invocation count not incremented even though methods should have been invoked", 2, mct.getInvocationCount());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals("Number of exported elements is incorrect", 2, snapshot.exportCache("single-argument", Channels.newChannel(out)));
+
+        cacheManager.getCache("single-argument").removeAll();
+
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        assertEquals("Number of imported elements is incorrect", 2, snapshot.importCache("single-argument", Channels.newChannel(in)));
+
+        assertEquals("Return value for imported element is incorrect", "single-argument", mct.getString("arg0"));
+        assertEquals("Return value for imported element is incorrect", "single-argument", mct.getString("arg1"));
+        assertEquals("Invocation count changed even though values should have been imported", 2, mct.getInvocationCount());
+    }
+
+    @Test
+    public void timeToLivePreservedTest() throws Exception {
+        CacheSnapshot snapshot = injector.getInstance(CacheSnapshot.class);
+
+        cacheManager.addCache("snapshot-source");
+        cacheManager.getCache("snapshot-source").put(new Element("key", "value", Boolean.FALSE, 0, 30));
+        cacheManager.getCache("snapshot-source").put(new Element("eternal", "value", Boolean.TRUE, 0, 0));
+        cacheManager.addCache("snapshot-target");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        snapshot.exportCache("snapshot-source", Channels.newChannel(out));
+
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        snapshot.importCache("snapshot-target", Channels.newChannel(in));
+
+        Element element = cacheManager.getCache("snapshot-target").get("key");
+        assertNotNull("Imported element not found", element);
+        assertTrue("Time to live not preserved on import", element.getTimeToLive() > 0 && element.getTimeToLive() <= 30);
+        assertTrue("Eternal flag not preserved on import", cacheManager.getCache("snapshot-target").get("eternal").isEternal());
+    }
+
+    @Test
+    public void explicitTimeToLiveOnlyTest() throws Exception {
+        CacheSnapshot snapshot = injector.getInstance(CacheSnapshot.class);
+
+        Element source = new Element("key", "value");
+        source.setTimeToLive(30);
+        cacheManager.addCache("snapshot-source");
+        cacheManager.getCache("snapshot-source").put(source);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        snapshot.exportCache("snapshot-source", Channels.newChannel(out));
+
+        cacheManager.addCache("snapshot-target");
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        assertEquals("Element with only a time to live not imported", 1, snapshot.importCache("snapshot-target", Channels.newChannel(in)));
+
+        Element element = cacheManager.getCache("snapshot-target").get("key");
+        assertTrue("Time to live not preserved on import", element.getTimeToLive() > 0 && element.getTimeToLive() <= 30);
+        assertEquals("Unset time to idle not imported as none", 0, element.getTimeToIdle());
+    }
+
+    @Test
+    public void accessedElementTimeToLiveTest() throws Exception {
+        CachedMethods mct = injector.getInstance(CachedMethods.class);
+        CacheSnapshot snapshot = injector.getInstance(CacheSnapshot.class);
+
+        mct.getString("arg");
+        mct.getString("arg");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        snapshot.exportCache("single-argument", Channels.newChannel(out));
+        cacheManager.getCache("single-argument").removeAll();
+
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        snapshot.importCache("single-argument", Channels.newChannel(in));
+
+        Element element = cacheManager.getCache("single-argument").get("arg");
+        assertTrue("Time to live of accessed element shortened to time to idle on import", element.getTimeToLive() > 45);
+        assertEquals("Time to idle not preserved on import", 45, element.getTimeToIdle());
+    }
+
+    @Test
+    public void defaultLifespanTest() throws Exception {
+        CacheSnapshot snapshot = injector.getInstance(CacheSnapshot.class);
+
+        cacheManager.addCache(new net.sf.ehcache.Cache("snapshot-no-expiry", 100, false, false, 0, 0));
+        cacheManager.getCache("snapshot-no-expiry").put(new Element("key", "value"));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        snapshot.exportCache("snapshot-no-expiry", Channels.newChannel(out));
+
+        cacheManager.addCache("snapshot-target");
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        snapshot.importCache("snapshot-target", Channels.newChannel(in));
+
+        Element element = cacheManager.getCache("snapshot-target").get("key");
+        assertTrue("Element using cache defaults imported with a lifespan of its own", element.usesCacheDefaultLifespan());
+        assertEquals("Time to live of target cache not applied on import", 120, element.getTimeToLive());
+    }
+
+    @Test
+    public void missingCacheTest() throws Exception {
+        CacheSnapshot snapshot = injector.getInstance(CacheSnapshot.class);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            snapshot.exportCache("single-argument", Channels.newChannel(out));
+            fail("Export from a cache that does not exist should fail");
+        } catch (IllegalStateException e) {
+            assertEquals("Nothing should be written for a cache that does not exist", 0, out.size());
+        }
+
+        cacheManager.addCache("snapshot-empty");
+        snapshot.exportCache("snapshot-empty", Channels.newChannel(out));
+
+        try {
+            snapshot.importCache("single-argument", Channels.newChannel(new ByteArrayInputStream(out.toByteArray())));
+            fail("Import into a cache that does not exist should fail");
+        } catch (IllegalStateException e) {
+            assertFalse("Cache created by import", cacheManager.cacheExists("single-argument"));
+        }
+
+        /**
+         * Calling the annotated method creates the cache with the annotation
+         * settings, which the import then keeps
+         */
+        CachedMethods mct = injector.getInstance(CachedMethods.class);
+        mct.getString("arg");
+
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        assertEquals("Elements imported from an empty snapshot", 0, snapshot.importCache("single-argument", Channels.newChannel(in)));
+
+        CacheConfiguration configuration = cacheManager.getCache("single-argument").getCacheConfiguration();
+        assertEquals("Annotated max elements in memory lost", 10, configuration.getMaxEntriesLocalHeap());
+        assertEquals("Annotated time to live lost", 60, configuration.getTimeToLiveSeconds());
+        assertEquals("Annotated time to idle lost", 45, configuration.getTimeToIdleSeconds());
+    }
+
+    @Test
+    public void nonSerializableSkippedTest() throws Exception {
+        CachedMethods mct = injector.getInstance(CachedMethods.class);
+        CacheSnapshot snapshot = injector.getInstance(CacheSnapshot.class);
+
+        mct.getNonSerializable(1);
+        cacheManager.getCache("getNonSerializable").put(new Element(2, "serializable"));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals("Non-serializable element exported", 1, snapshot.exportCache("getNonSerializable", Channels.newChannel(out)));
+
+        cacheManager.getCache("getNonSerializable").removeAll();
+
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        assertEquals("Number of imported elements is incorrect", 1, snapshot.importCache("getNonSerializable", Channels.newChannel(in)));
+        assertEquals("Serializable element not imported", "serializable", cacheManager.getCache("getNonSerializable").get(2).getObjectValue());
+    }
+
+    @Test
+    public void parallelImportTest() throws Exception {
+        CacheSnapshot snapshot = new CacheSnapshot(cacheManager, 2);
+
+        cacheManager.addCache("snapshot-source");
+        for (int i = 0; i < 1000; i++) {
+            cacheManager.getCache("snapshot-source").put(new Element(i, "value-" + i));
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals("Number of exported elements is incorrect", 1000, snapshot.exportCache("snapshot-source", Channels.newChannel(out)));
+
+        cacheManager.addCache("snapshot-target");
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        assertEquals("Number of imported elements is incorrect", 1000, snapshot.importCache("snapshot-target", Channels.newChannel(in)));
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("Imported element is incorrect", "value-" + i, cacheManager.getCache("snapshot-target").get(i).getObjectValue());
+        }
+    }
+
+    @Test
+    public void corruptLengthTest() throws Exception {
+        CacheSnapshot snapshot = new CacheSnapshot(cacheManager, 2, 1024);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(0x43414348);
+        data.writeInt(1);
+        data.writeInt(Integer.MAX_VALUE);
+        data.flush();
+
+        cacheManager.addCache("snapshot-target");
+        try {
+            snapshot.importCache("snapshot-target", Channels.newChannel(new ByteArrayInputStream(out.toByteArray())));
+            fail("Record longer than the maximum record size should be rejected");
+        } catch (IOException e) {
+            assertEquals("Elements imported from a corrupt snapshot", 0, cacheManager.getCache("snapshot-target").getSize());
+        }
+    }
+
+    @Test
+    public void badMagicTest() throws Exception {
+        CacheSnapshot snapshot = injector.getInstance(CacheSnapshot.class);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(0xCAFEBABE);
+        data.writeInt(1);
+        data.flush();
+
+        cacheManager.addCache("snapshot-target");
+        try {
+            snapshot.importCache("snapshot-target", Channels.newChannel(new ByteArrayInputStream(out.toByteArray())));
+            fail("Snapshot with a bad magic number should be rejected");
+        } catch (IOException e) {
+            assertEquals("Exception message is incorrect", "Not a cache snapshot", e.getMessage());
+        }
+    }
+}
@@ -84,6 +84,59 @@ public class CachedMethods {
         return "multiple-arguments";
     }
 
+    /**
+     * A method that only uses the cache for arguments that are not empty, and
+     * does not cache degraded return values.
+     *
+     * @param arg
+     * @return
+     */
+    @Cache(name = "conditional", condition = NotEmpty.class, unless = Degraded.class)
+    public String getStringConditional(String arg) {
+        invocationCount++;
+
+        return arg.startsWith("fail") ? "degraded" : "conditional";
+    }
+
+    /**
+     * A method whose return values get a time to live assigned by a policy.
+     *
+     * @param arg
+     * @return
+     */
+    @Cache(name = "ttl-policy", timeToLiveSeconds = 60, ttlPolicy = ArgumentLength.class)
+    public String getStringTtlPolicy(String arg) {
+        invocationCount++;
+
+        return "ttl-policy";
+    }
+
+    /**
+     * A method whose TTL policy leaves the time to live to the cache.
+     *
+     * @param arg
+     * @return
+     */
+    @Cache(name = "ttl-policy-default", timeToLiveSeconds = 60, ttlPolicy = CacheDefault.class)
+    public String getStringTtlPolicyDefault(String arg) {
+        invocationCount++;
+
+        return "ttl-policy";
+    }
+
+    /**
+     * A method whose TTL policy returns an invalid time to live.
+     *
+     * @param arg
+     * @return
+     */
+    @Cache(name = "ttl-policy-invalid", ttlPolicy = Invalid.class)
+    public String getStringTtlPolicyInvalid(String arg) {
+        invocationCount++;
+
+        return "ttl-policy";
+    }
+
     /**
      * Get the number of times these methods have been invoked.
      *
@@ -93,6 +146,45 @@ public class CachedMethods {
         return invocationCount;
     }
 
+    public static class NotEmpty implements CachePredicate {
+
+        public boolean apply(Object[] arguments, Object returnValue) {
+            return ((String) arguments[0]).length() > 0;
+        }
+    }
+
+    public static class Degraded implements CachePredicate {
+
+        public boolean apply(Object[] arguments, Object returnValue) {
+            return "degraded".equals(returnValue);
+        }
+    }
+
+    /**
+     * Uses the length of the argument as the time to live, so that an empty
+     * argument is not cached.
+     */
+    public static class ArgumentLength implements CacheTtlPolicy {
+
+        public long timeToLiveSeconds(Object[] arguments, Object returnValue) {
+            return ((String) arguments[0]).length();
+        }
+    }
+
+    public static class CacheDefault implements CacheTtlPolicy {
+
+        public long timeToLiveSeconds(Object[] arguments, Object returnValue) {
+            return -1;
+        }
+    }
+
+    public static class Invalid implements CacheTtlPolicy {
+
+        public long timeToLiveSeconds(Object[] arguments, Object returnValue) {
+            return -2;
+        }
+    }
+
     public static class NonSerializable {
 
         private int number;